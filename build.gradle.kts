@@ -30,6 +30,53 @@ dependencies {
     runtimeOnly("org.lwjgl:lwjgl:$lwjglVersion:$lwjglNatives")
     runtimeOnly("org.lwjgl:lwjgl-glfw:$lwjglVersion:$lwjglNatives")
     runtimeOnly("org.lwjgl:lwjgl-opengl:$lwjglVersion:$lwjglNatives")
+
+    testImplementation(platform("org.junit:junit-bom:5.10.2"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+}
+
+tasks.test {
+    useJUnitPlatform()
+}
+
+val meshDir = layout.buildDirectory.dir("meshes")
+
+// Pre-bakes the binary mesh cache so the app maps meshes instead of generating them at startup
+val bakeMeshes by tasks.registering(JavaExec::class) {
+    group = "build"
+    description = "Writes the binary mesh cache to build/meshes."
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("pl.gk.MeshBaker")
+    args(meshDir.get().asFile.absolutePath)
+    inputs.files(sourceSets.main.get().output)
+    outputs.dir(meshDir)
+}
+
+// Mapped files cannot live inside a jar, so the distribution ships them in meshes/ next to lib/,
+// where Main looks for them by default
+distributions {
+    main {
+        contents {
+            from(bakeMeshes) {
+                into("meshes")
+            }
+        }
+    }
+}
+
+tasks.named<JavaExec>("run") {
+    dependsOn(bakeMeshes)
+    systemProperty("phong.meshDir", meshDir.get().asFile.absolutePath)
+}
+
+// Startup time of generated vs memory-mapped meshes
+tasks.register<JavaExec>("benchmarkMeshes") {
+    group = "verification"
+    description = "Benchmarks sphere generation against loading baked mesh files."
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("pl.gk.MeshBenchmark")
+    args(layout.buildDirectory.dir("benchmark-meshes").get().asFile.absolutePath)
 }
 
 tasks.jar {
@@ -6,7 +6,12 @@ import org.lwjgl.glfw.GLFWVidMode;
 import org.lwjgl.opengl.GL;
 import org.lwjgl.system.MemoryStack;
 
+import java.io.IOException;
+import java.net.URISyntaxException;
 import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Objects;
 
 import static org.lwjgl.glfw.Callbacks.glfwFreeCallbacks;
@@ -34,6 +39,10 @@ public class Main {
     private int vao;
     private int vbo;
     private int ebo;
+    private int sphereIndexCount;
+
+    // Directory with meshes baked by the bakeMeshes Gradle task
+    private final Path meshDir = findMeshDir();
     float[] lightPosition = {2.0f, 2.0f, 2.0f};
     float lightSpeed = 0.5f; // Zwiększona prędkość światła
 
@@ -183,20 +192,62 @@ public class Main {
         vao = glGenVertexArrays();
         glBindVertexArray(vao);
 
-        // Create sphere vertices, normals, and indices using SphereGenerator
-        SphereGenerator sphere = new SphereGenerator(1.0f, 32, 32);
-        float[] vertices = sphere.getVertices();
-        int[] indices = sphere.getIndices();
-
         // Create and bind VBO for vertices
         vbo = glGenBuffers();
         glBindBuffer(GL_ARRAY_BUFFER, vbo);
-        glBufferData(GL_ARRAY_BUFFER, vertices, GL_STATIC_DRAW);
 
         // Create and bind EBO for indices
         ebo = glGenBuffers();
         glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, ebo);
-        glBufferData(GL_ELEMENT_ARRAY_BUFFER, indices, GL_STATIC_DRAW);
+
+        sphereIndexCount = bufferMesh(MeshPreset.SPHERE);
+
+        // Unbind VAO
+        glBindVertexArray(0);
+    }
+
+    // Fills the bound VBO/EBO and sets the attributes of the bound VAO; returns the index count
+    private int bufferMesh(MeshPreset preset) {
+        long start = System.nanoTime();
+        Path path = preset.path(meshDir);
+
+        MeshFile mesh = null;
+        if (Files.isRegularFile(path)) {
+            try {
+                mesh = MeshFile.map(path);
+            } catch (IOException | RuntimeException e) {
+                // A malformed cache file must never stop startup
+                System.err.println("Failed to load " + path + ", generating instead: " + e.getMessage());
+            }
+        } else {
+            System.out.println("No baked mesh at " + path + ", generating instead");
+        }
+
+        if (mesh != null && !mesh.getSource().equals(preset.source())) {
+            System.err.println("Baked mesh " + path + " is stale (" + mesh.getSource() + "), generating instead");
+            mesh = null;
+        }
+
+        if (mesh != null) {
+            // Mapped file goes straight to the driver, no float[]/int[] copies
+            glBufferData(GL_ARRAY_BUFFER, mesh.getVertexData(), GL_STATIC_DRAW);
+            glBufferData(GL_ELEMENT_ARRAY_BUFFER, mesh.getIndexData(), GL_STATIC_DRAW);
+
+            for (MeshFile.Attribute attribute : mesh.getAttributes()) {
+                glVertexAttribPointer(attribute.location, attribute.components, attribute.type,
+                        attribute.normalized, mesh.getStride(), attribute.offset);
+                glEnableVertexAttribArray(attribute.location);
+            }
+
+            System.out.printf("Mesh %s: mapped from %s in %.3f ms%n",
+                    preset, path, (System.nanoTime() - start) / 1_000_000.0);
+            return mesh.getIndexCount();
+        }
+
+        // Create sphere vertices, normals, and indices using SphereGenerator
+        SphereGenerator sphere = preset.generate();
+        glBufferData(GL_ARRAY_BUFFER, sphere.getVertices(), GL_STATIC_DRAW);
+        glBufferData(GL_ELEMENT_ARRAY_BUFFER, sphere.getIndices(), GL_STATIC_DRAW);
 
         // Position attribute
         glVertexAttribPointer(0, 3, GL_FLOAT, false, 6 * Float.BYTES, 0);
@@ -206,8 +257,24 @@ public class Main {
         glVertexAttribPointer(1, 3, GL_FLOAT, false, 6 * Float.BYTES, 3 * Float.BYTES);
         glEnableVertexAttribArray(1);
 
-        // Unbind VAO
-        glBindVertexArray(0);
+        System.out.printf("Mesh %s: generated in %.3f ms%n",
+                preset, (System.nanoTime() - start) / 1_000_000.0);
+        return sphere.getIndexCount();
+    }
+
+    // phong.meshDir if set, otherwise meshes/ next to the directory holding the jar
+    // (lib/ in the distribution, build/libs/ for the build output)
+    private static Path findMeshDir() {
+        String property = System.getProperty("phong.meshDir");
+        if (property != null) {
+            return Paths.get(property);
+        }
+        try {
+            Path codeSource = Paths.get(Main.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            return codeSource.toAbsolutePath().getParent().resolveSibling("meshes");
+        } catch (URISyntaxException | RuntimeException e) {
+            return Paths.get("meshes");
+        }
     }
 
     private void setupShaders() {
@@ -261,7 +328,6 @@ public class Main {
 //        float[] lightPosition = {1.0f, 0.0f, 2.0f};
 
         // Light visualization sphere
-        SphereGenerator lightSphere = new SphereGenerator(0.2f, 16, 16);
         int lightVAO = glGenVertexArrays();
         int lightVBO = glGenBuffers();
         int lightEBO = glGenBuffers();
@@ -269,21 +335,10 @@ public class Main {
         // Bind light sphere VAO
         glBindVertexArray(lightVAO);
 
-        // Buffer light sphere vertices
+        // Buffer light sphere vertices and indices
         glBindBuffer(GL_ARRAY_BUFFER, lightVBO);
-        glBufferData(GL_ARRAY_BUFFER, lightSphere.getVertices(), GL_STATIC_DRAW);
-
-        // Buffer light sphere indices
         glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, lightEBO);
-        glBufferData(GL_ELEMENT_ARRAY_BUFFER, lightSphere.getIndices(), GL_STATIC_DRAW);
-
-        // Position attribute
-        glVertexAttribPointer(0, 3, GL_FLOAT, false, 6 * Float.BYTES, 0);
-        glEnableVertexAttribArray(0);
-
-        // Normal attribute
-        glVertexAttribPointer(1, 3, GL_FLOAT, false, 6 * Float.BYTES, 3 * Float.BYTES);
-        glEnableVertexAttribArray(1);
+        int lightIndexCount = bufferMesh(MeshPreset.LIGHT);
 
         // Unbind VAO
         glBindVertexArray(0);
@@ -333,8 +388,7 @@ public class Main {
 
             // Draw the main sphere
             glBindVertexArray(vao);
-            SphereGenerator sphere = new SphereGenerator(1.0f, 32, 32);
-            glDrawElements(GL_TRIANGLES, sphere.getIndexCount(), GL_UNSIGNED_INT, 0);
+            glDrawElements(GL_TRIANGLES, sphereIndexCount, GL_UNSIGNED_INT, 0);
 
             // Draw the light source visualization sphere
             // Create model matrix for light
@@ -350,7 +404,7 @@ public class Main {
 
             // Draw light sphere
             glBindVertexArray(lightVAO);
-            glDrawElements(GL_TRIANGLES, lightSphere.getIndexCount(), GL_UNSIGNED_INT, 0);
+            glDrawElements(GL_TRIANGLES, lightIndexCount, GL_UNSIGNED_INT, 0);
 
             glBindVertexArray(0);
 
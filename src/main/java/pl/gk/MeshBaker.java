@@ -0,0 +1,31 @@
+package pl.gk;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// Writes every MeshPreset into the mesh cache directory (run by the bakeMeshes Gradle task)
+public class MeshBaker {
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: MeshBaker <output directory>");
+            System.exit(1);
+        }
+
+        Path meshDir = Paths.get(args[0]);
+        for (MeshPreset preset : MeshPreset.values()) {
+            Path path = preset.path(meshDir);
+            bake(preset, path);
+            System.out.println("Baked " + preset + " -> " + path);
+        }
+    }
+
+    public static void bake(MeshPreset preset, Path path) throws IOException {
+        bake(preset.generate(), preset.source(), path);
+    }
+
+    public static void bake(SphereGenerator sphere, String source, Path path) throws IOException {
+        MeshFile.write(path, source, 6 * Float.BYTES, MeshFile.positionNormalLayout(),
+                sphere.getVertices(), sphere.getIndices());
+    }
+}
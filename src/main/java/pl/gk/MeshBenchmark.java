@@ -0,0 +1,89 @@
+package pl.gk;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+// Compares the CPU-side startup cost of generating a sphere against mapping its baked file.
+// Both paths end with data ready for glBufferData, so no OpenGL context is needed.
+// Meshes are baked into the directory given as the argument, or into a temporary directory
+// that is deleted afterwards.
+public class MeshBenchmark {
+    private static final int WARMUP_RUNS = 20;
+    private static final int MEASURED_RUNS = 50;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0) {
+            run(Paths.get(args[0]));
+            return;
+        }
+
+        Path meshDir = Files.createTempDirectory("phong-meshes");
+        try {
+            run(meshDir);
+        } finally {
+            delete(meshDir);
+        }
+    }
+
+    private static void run(Path meshDir) throws IOException {
+        System.out.printf("%-22s %14s %14s%n", "mesh", "generated [ms]", "mapped [ms]");
+        for (MeshPreset preset : MeshPreset.values()) {
+            run(preset, meshDir);
+        }
+        // High-tessellation meshes are where baking pays off
+        run("SPHERE 256x256", 1.0f, 256, 256, meshDir);
+        run("SPHERE 1024x1024", 1.0f, 1024, 1024, meshDir);
+    }
+
+    private static void run(MeshPreset preset, Path meshDir) throws IOException {
+        Path path = preset.path(meshDir);
+        MeshBaker.bake(preset, path);
+        report(preset.toString(), measure(preset::generate), measure(() -> MeshFile.map(path)));
+    }
+
+    private static void run(String label, float radius, int latitudeCount, int longitudeCount,
+                            Path meshDir) throws IOException {
+        Path path = meshDir.resolve(latitudeCount + "x" + longitudeCount + ".mesh");
+        MeshBaker.bake(new SphereGenerator(radius, latitudeCount, longitudeCount),
+                MeshPreset.source(radius, latitudeCount, longitudeCount), path);
+        report(label, measure(() -> new SphereGenerator(radius, latitudeCount, longitudeCount)),
+                measure(() -> MeshFile.map(path)));
+    }
+
+    private interface Task {
+        Object run() throws IOException;
+    }
+
+    // Median wall time in milliseconds
+    private static double measure(Task task) throws IOException {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            task.run();
+        }
+        long[] times = new long[MEASURED_RUNS];
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            long start = System.nanoTime();
+            task.run();
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        return times[MEASURED_RUNS / 2] / 1_000_000.0;
+    }
+
+    private static void report(String label, double generated, double mapped) {
+        System.out.printf("%-22s %14.3f %14.3f%n", label, generated, mapped);
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            // Children before their parent directory
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
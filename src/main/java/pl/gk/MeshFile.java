@@ -0,0 +1,315 @@
+package pl.gk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Binary mesh cache. A file holds a header, a vertex layout descriptor, a source key naming
+ * the generator parameters, the raw vertex and index blobs and a CRC32 of everything except
+ * the checksum field. Everything is stored little-endian so the mapped blobs can be handed
+ * to glBufferData as they are. Indices are checked against the vertex count on load, so a
+ * file that passes map() never makes glDrawElements read outside the vertex buffer.
+ */
+public class MeshFile {
+    public static final int MAGIC = 0x534D4850; // "PHMS"
+    public static final int VERSION = 3;
+
+    // Component types, same values as the OpenGL enums
+    public static final int TYPE_BYTE = 0x1400;
+    public static final int TYPE_UNSIGNED_BYTE = 0x1401;
+    public static final int TYPE_SHORT = 0x1402;
+    public static final int TYPE_UNSIGNED_SHORT = 0x1403;
+    public static final int TYPE_FLOAT = 0x1406;
+    public static final int TYPE_HALF_FLOAT = 0x140B;
+
+    private static final int HEADER_INTS = 4;         // magic, version, stride, attribute count
+    private static final int ATTRIBUTE_INTS = 5;      // location, components, type, normalized, offset
+    private static final int COUNT_INTS = 3;          // vertex count, index count, source key length
+
+    // Vertex layout: interleaved attributes, one entry per vertex attribute
+    public static class Attribute {
+        public final int location;
+        public final int components;
+        public final int type;
+        public final boolean normalized;
+        public final int offset;
+
+        public Attribute(int location, int components, int type, boolean normalized, int offset) {
+            this.location = location;
+            this.components = components;
+            this.type = type;
+            this.normalized = normalized;
+            this.offset = offset;
+        }
+    }
+
+    private final String source;
+    private final int stride;
+    private final Attribute[] attributes;
+    private final int vertexCount;
+    private final int indexCount;
+    private final ByteBuffer vertexData;
+    private final ByteBuffer indexData;
+
+    private MeshFile(String source, int stride, Attribute[] attributes, int vertexCount, int indexCount,
+                     ByteBuffer vertexData, ByteBuffer indexData) {
+        this.source = source;
+        this.stride = stride;
+        this.attributes = attributes;
+        this.vertexCount = vertexCount;
+        this.indexCount = indexCount;
+        this.vertexData = vertexData;
+        this.indexData = indexData;
+    }
+
+    // Layout produced by SphereGenerator: position (location 0) and normal (location 1)
+    public static Attribute[] positionNormalLayout() {
+        return new Attribute[] {
+                new Attribute(0, 3, TYPE_FLOAT, false, 0),
+                new Attribute(1, 3, TYPE_FLOAT, false, 3 * Float.BYTES)
+        };
+    }
+
+    public static void write(Path path, String source, int stride, Attribute[] attributes,
+                             float[] vertices, int[] indices) throws IOException {
+        ByteBuffer vertexData = ByteBuffer.allocate(vertices.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        vertexData.asFloatBuffer().put(vertices);
+        write(path, source, stride, attributes, vertexData, indices);
+    }
+
+    // vertexData holds the interleaved vertices, already encoded little-endian as the layout describes
+    public static void write(Path path, String source, int stride, Attribute[] attributes,
+                             ByteBuffer vertexData, int[] indices) throws IOException {
+        if (stride <= 0) {
+            throw new IllegalArgumentException("Stride must be positive");
+        }
+        if (vertexData.remaining() % stride != 0) {
+            throw new IllegalArgumentException("Vertex data is not a multiple of the stride");
+        }
+        for (Attribute attribute : attributes) {
+            if (!isValid(attribute, stride)) {
+                throw new IllegalArgumentException("Attribute " + attribute.location + " does not fit the stride");
+            }
+        }
+        int vertexCount = vertexData.remaining() / stride;
+        for (int index : indices) {
+            if (index < 0 || index >= vertexCount) {
+                throw new IllegalArgumentException("Index " + index + " is out of range");
+            }
+        }
+
+        byte[] sourceBytes = source.getBytes(StandardCharsets.UTF_8);
+        int headerBytes = headerSize(attributes.length, sourceBytes.length);
+        int vertexBytes = vertexData.remaining();
+        int indexBytes = indices.length * Integer.BYTES;
+
+        ByteBuffer buffer = ByteBuffer.allocate(headerBytes + vertexBytes + indexBytes)
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(stride);
+        buffer.putInt(attributes.length);
+        for (Attribute attribute : attributes) {
+            buffer.putInt(attribute.location);
+            buffer.putInt(attribute.components);
+            buffer.putInt(attribute.type);
+            buffer.putInt(attribute.normalized ? 1 : 0);
+            buffer.putInt(attribute.offset);
+        }
+        buffer.putInt(vertexCount);
+        buffer.putInt(indices.length);
+        buffer.putInt(sourceBytes.length);
+        buffer.put(sourceBytes);
+
+        // Checksum is filled in last, once everything it covers has been written
+        int checksumPosition = headerBytes - Long.BYTES;
+        buffer.position(headerBytes);
+        buffer.put(vertexData.duplicate());
+        buffer.asIntBuffer().put(indices);
+        buffer.putLong(checksumPosition, checksum(buffer, checksumPosition));
+        buffer.position(0);
+
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    public static MeshFile map(Path path) throws IOException {
+        // The blobs go to OpenGL untouched, so they must already be in native order
+        if (ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN) {
+            throw new IOException("Mesh files require a little-endian platform");
+        }
+
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Mesh file too large: " + path);
+            }
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buffer.remaining() < headerSize(0, 0) || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a mesh file: " + path);
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported mesh file version " + version + ": " + path);
+        }
+        int stride = buffer.getInt();
+        int attributeCount = buffer.getInt();
+        // Bound the count by the file size before allocating anything for it
+        int maxAttributes = (buffer.capacity() - headerSize(0, 0)) / (ATTRIBUTE_INTS * Integer.BYTES);
+        if (stride <= 0 || attributeCount < 0 || attributeCount > maxAttributes) {
+            throw new IOException("Corrupt mesh header: " + path);
+        }
+
+        Attribute[] attributes = new Attribute[attributeCount];
+        for (int i = 0; i < attributeCount; i++) {
+            int location = buffer.getInt();
+            int components = buffer.getInt();
+            int type = buffer.getInt();
+            int normalized = buffer.getInt();
+            int offset = buffer.getInt();
+            if (normalized != 0 && normalized != 1) {
+                throw new IOException("Corrupt mesh header: " + path);
+            }
+            attributes[i] = new Attribute(location, components, type, normalized == 1, offset);
+        }
+        int vertexCount = buffer.getInt();
+        int indexCount = buffer.getInt();
+        int sourceLength = buffer.getInt();
+        if (sourceLength < 0 || sourceLength > buffer.remaining() - Long.BYTES) {
+            throw new IOException("Corrupt mesh header: " + path);
+        }
+
+        int headerBytes = headerSize(attributeCount, sourceLength);
+        long vertexBytes = (long) vertexCount * stride;
+        long indexBytes = (long) indexCount * Integer.BYTES;
+        if (vertexCount < 0 || indexCount < 0
+                || headerBytes + vertexBytes + indexBytes != buffer.capacity()) {
+            throw new IOException("Mesh blob sizes do not match the file size: " + path);
+        }
+
+        byte[] sourceBytes = new byte[sourceLength];
+        buffer.get(sourceBytes);
+        int checksumPosition = headerBytes - Long.BYTES;
+        if (checksum(buffer, checksumPosition) != buffer.getLong(checksumPosition)) {
+            throw new IOException("Mesh checksum mismatch: " + path);
+        }
+
+        // The layout is handed to glVertexAttribPointer, so every attribute must lie inside a vertex
+        for (Attribute attribute : attributes) {
+            if (!isValid(attribute, stride)) {
+                throw new IOException("Attribute " + attribute.location + " does not fit the stride: " + path);
+            }
+        }
+
+        ByteBuffer vertexData = slice(buffer, headerBytes, (int) vertexBytes);
+        ByteBuffer indexData = slice(buffer, headerBytes + (int) vertexBytes, (int) indexBytes);
+
+        // The checksum pass just paged the indices in, so this check is a cheap sequential scan
+        for (int i = 0; i < indexCount; i++) {
+            int index = indexData.getInt(i * Integer.BYTES);
+            if (index < 0 || index >= vertexCount) {
+                throw new IOException("Index " + index + " is out of range: " + path);
+            }
+        }
+
+        return new MeshFile(new String(sourceBytes, StandardCharsets.UTF_8), stride, attributes,
+                vertexCount, indexCount, vertexData, indexData);
+    }
+
+    // CRC32 of the whole file except the checksum field itself
+    private static long checksum(ByteBuffer buffer, int checksumPosition) {
+        CRC32 crc = new CRC32();
+        crc.update(slice(buffer, 0, checksumPosition));
+        int blobsPosition = checksumPosition + Long.BYTES;
+        crc.update(slice(buffer, blobsPosition, buffer.capacity() - blobsPosition));
+        return crc.getValue();
+    }
+
+    private static boolean isValid(Attribute attribute, int stride) {
+        int size = typeSize(attribute.type);
+        return size > 0
+                && attribute.location >= 0
+                && attribute.components >= 1 && attribute.components <= 4
+                && attribute.offset >= 0 && attribute.offset % size == 0
+                && (long) attribute.offset + (long) attribute.components * size <= stride;
+    }
+
+    // Bytes per component, or -1 for types the format does not support
+    private static int typeSize(int type) {
+        switch (type) {
+            case TYPE_BYTE:
+            case TYPE_UNSIGNED_BYTE:
+                return 1;
+            case TYPE_SHORT:
+            case TYPE_UNSIGNED_SHORT:
+            case TYPE_HALF_FLOAT:
+                return 2;
+            case TYPE_FLOAT:
+                return 4;
+            default:
+                return -1;
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // Source key is padded to a multiple of 4 so the blobs stay aligned
+    private static int headerSize(int attributeCount, int sourceLength) {
+        int paddedSource = (sourceLength + 3) & ~3;
+        return (HEADER_INTS + attributeCount * ATTRIBUTE_INTS + COUNT_INTS) * Integer.BYTES
+                + paddedSource + Long.BYTES;
+    }
+
+    // Identifies the generator parameters the mesh was baked from
+    public String getSource() {
+        return source;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    public Attribute[] getAttributes() {
+        return attributes;
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public int getIndexCount() {
+        return indexCount;
+    }
+
+    // Read-only views into the mapped file, positioned at zero
+    public ByteBuffer getVertexData() {
+        return vertexData.duplicate();
+    }
+
+    public ByteBuffer getIndexData() {
+        return indexData.duplicate();
+    }
+}
@@ -0,0 +1,40 @@
+package pl.gk;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+// Meshes baked at build time and loaded by Main at startup
+public enum MeshPreset {
+    SPHERE("sphere", 1.0f, 32, 32),
+    LIGHT("light", 0.2f, 16, 16);
+
+    private final String name;
+    private final float radius;
+    private final int latitudeCount;
+    private final int longitudeCount;
+
+    MeshPreset(String name, float radius, int latitudeCount, int longitudeCount) {
+        this.name = name;
+        this.radius = radius;
+        this.latitudeCount = latitudeCount;
+        this.longitudeCount = longitudeCount;
+    }
+
+    public SphereGenerator generate() {
+        return new SphereGenerator(radius, latitudeCount, longitudeCount);
+    }
+
+    // Stored in each baked file, so a mesh baked from different parameters is detected as stale
+    public String source() {
+        return source(radius, latitudeCount, longitudeCount);
+    }
+
+    public static String source(float radius, int latitudeCount, int longitudeCount) {
+        return String.format(Locale.ROOT, "sphere radius=%s latitude=%d longitude=%d",
+                Float.toString(radius), latitudeCount, longitudeCount);
+    }
+
+    public Path path(Path meshDir) {
+        return meshDir.resolve(name + ".mesh");
+    }
+}
@@ -0,0 +1,236 @@
+package pl.gk;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MeshFileTest {
+    // Byte offsets in a file with the two-attribute position/normal layout
+    private static final int VERSION_OFFSET = 4;
+    private static final int ATTRIBUTE_COUNT_OFFSET = 12;
+    private static final int NORMAL_COMPONENTS_OFFSET = 40;
+    private static final int NORMAL_TYPE_OFFSET = 44;
+    private static final int NORMAL_NORMALIZED_OFFSET = 48;
+    private static final int NORMAL_OFFSET_OFFSET = 52;
+    private static final int VERTEX_COUNT_OFFSET = 56;
+    private static final int SOURCE_LENGTH_OFFSET = 64;
+    private static final int SOURCE_OFFSET = 68;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void mapReturnsWrittenMesh() throws IOException {
+        SphereGenerator sphere = MeshPreset.SPHERE.generate();
+        Path path = bake(MeshPreset.SPHERE);
+
+        MeshFile mesh = MeshFile.map(path);
+
+        assertEquals(MeshPreset.SPHERE.source(), mesh.getSource());
+        assertEquals(6 * Float.BYTES, mesh.getStride());
+        assertEquals(2, mesh.getAttributes().length);
+        assertEquals(1, mesh.getAttributes()[1].location);
+        assertEquals(3, mesh.getAttributes()[1].components);
+        assertEquals(MeshFile.TYPE_FLOAT, mesh.getAttributes()[1].type);
+        assertFalse(mesh.getAttributes()[1].normalized);
+        assertEquals(3 * Float.BYTES, mesh.getAttributes()[1].offset);
+        assertEquals(sphere.getVertices().length / 6, mesh.getVertexCount());
+        assertEquals(sphere.getIndexCount(), mesh.getIndexCount());
+
+        float[] vertices = new float[sphere.getVertices().length];
+        mesh.getVertexData().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vertices);
+        assertArrayEquals(sphere.getVertices(), vertices);
+
+        int[] indices = new int[sphere.getIndexCount()];
+        mesh.getIndexData().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(indices);
+        assertArrayEquals(sphere.getIndices(), indices);
+    }
+
+    @Test
+    public void mapReturnsCompressedLayout() throws IOException {
+        // Float position followed by a normalized byte normal, padded to 16 bytes
+        MeshFile.Attribute[] layout = {
+                new MeshFile.Attribute(0, 3, MeshFile.TYPE_FLOAT, false, 0),
+                new MeshFile.Attribute(1, 3, MeshFile.TYPE_BYTE, true, 3 * Float.BYTES)
+        };
+        ByteBuffer vertices = ByteBuffer.allocate(3 * 16).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < 3; i++) {
+            vertices.putFloat(i).putFloat(0.0f).putFloat(0.0f);
+            vertices.put((byte) 0).put((byte) 127).put((byte) 0).put((byte) 0);
+        }
+        vertices.flip();
+        Path path = tempDir.resolve("compressed.mesh");
+        MeshFile.write(path, "triangle", 16, layout, vertices, new int[] {0, 1, 2});
+
+        MeshFile mesh = MeshFile.map(path);
+
+        assertEquals("triangle", mesh.getSource());
+        assertEquals(3, mesh.getVertexCount());
+        assertEquals(MeshFile.TYPE_BYTE, mesh.getAttributes()[1].type);
+        assertTrue(mesh.getAttributes()[1].normalized);
+        assertEquals(vertices, mesh.getVertexData());
+    }
+
+    @Test
+    public void rejectsBadMagic() throws IOException {
+        byte[] bytes = read(bake(MeshPreset.LIGHT));
+        bytes[0] ^= 1;
+        assertThrows(IOException.class, () -> MeshFile.map(write(bytes)));
+    }
+
+    @Test
+    public void rejectsWrongVersion() throws IOException {
+        byte[] bytes = read(bake(MeshPreset.LIGHT));
+        putInt(bytes, VERSION_OFFSET, MeshFile.VERSION + 1);
+        assertThrows(IOException.class, () -> MeshFile.map(write(bytes)));
+    }
+
+    @Test
+    public void rejectsTruncatedFile() throws IOException {
+        byte[] bytes = read(bake(MeshPreset.LIGHT));
+        assertThrows(IOException.class, () -> MeshFile.map(write(Arrays.copyOf(bytes, bytes.length - 1))));
+        assertThrows(IOException.class, () -> MeshFile.map(write(Arrays.copyOf(bytes, 10))));
+        assertThrows(IOException.class, () -> MeshFile.map(write(new byte[0])));
+    }
+
+    @Test
+    public void rejectsCorruptBlob() throws IOException {
+        byte[] bytes = read(bake(MeshPreset.LIGHT));
+        bytes[dataOffset(bytes) + 5] ^= 1;
+        assertThrows(IOException.class, () -> MeshFile.map(write(bytes)));
+        bytes[dataOffset(bytes) + 5] ^= 1;
+        bytes[bytes.length - 1] ^= 1;
+        assertThrows(IOException.class, () -> MeshFile.map(write(bytes)));
+    }
+
+    @Test
+    public void rejectsCorruptCounts() throws IOException {
+        byte[] bytes = read(bake(MeshPreset.LIGHT));
+        putInt(bytes, ATTRIBUTE_COUNT_OFFSET, 0x20000000);
+        assertThrows(IOException.class, () -> MeshFile.map(write(bytes)));
+        putInt(bytes, ATTRIBUTE_COUNT_OFFSET, -1);
+        assertThrows(IOException.class, () -> MeshFile.map(write(bytes)));
+
+        byte[] vertexCount = read(bake(MeshPreset.LIGHT));
+        putInt(vertexCount, VERTEX_COUNT_OFFSET, Integer.MAX_VALUE);
+        assertThrows(IOException.class, () -> MeshFile.map(write(vertexCount)));
+
+        byte[] sourceLength = read(bake(MeshPreset.LIGHT));
+        putInt(sourceLength, SOURCE_LENGTH_OFFSET, Integer.MAX_VALUE);
+        assertThrows(IOException.class, () -> MeshFile.map(write(sourceLength)));
+    }
+
+    @Test
+    public void checksumCoversHeader() throws IOException {
+        byte[] bytes = read(bake(MeshPreset.LIGHT));
+        // Still within the stride, so only the checksum can catch it
+        putInt(bytes, NORMAL_OFFSET_OFFSET, 2 * Float.BYTES);
+        assertThrows(IOException.class, () -> MeshFile.map(write(bytes)));
+    }
+
+    @Test
+    public void rejectsAttributeOutsideStride() throws IOException {
+        byte[] bytes = read(bake(MeshPreset.LIGHT));
+        putInt(bytes, NORMAL_COMPONENTS_OFFSET, 9);
+        putInt(bytes, NORMAL_OFFSET_OFFSET, 4096);
+        assertThrows(IOException.class, () -> MeshFile.map(write(fixChecksum(bytes))));
+
+        putInt(bytes, NORMAL_COMPONENTS_OFFSET, 4);
+        putInt(bytes, NORMAL_OFFSET_OFFSET, 3 * Float.BYTES);
+        assertThrows(IOException.class, () -> MeshFile.map(write(fixChecksum(bytes))));
+
+        putInt(bytes, NORMAL_COMPONENTS_OFFSET, 3);
+        putInt(bytes, NORMAL_OFFSET_OFFSET, -4);
+        assertThrows(IOException.class, () -> MeshFile.map(write(fixChecksum(bytes))));
+
+        putInt(bytes, NORMAL_OFFSET_OFFSET, 3 * Float.BYTES);
+        putInt(bytes, NORMAL_TYPE_OFFSET, 0x1234);
+        assertThrows(IOException.class, () -> MeshFile.map(write(fixChecksum(bytes))));
+
+        putInt(bytes, NORMAL_TYPE_OFFSET, MeshFile.TYPE_FLOAT);
+        putInt(bytes, NORMAL_NORMALIZED_OFFSET, 2);
+        assertThrows(IOException.class, () -> MeshFile.map(write(fixChecksum(bytes))));
+
+        putInt(bytes, NORMAL_NORMALIZED_OFFSET, 0);
+        assertNotNull(MeshFile.map(write(fixChecksum(bytes))));
+    }
+
+    @Test
+    public void rejectsIndexOutOfRange() throws IOException {
+        SphereGenerator sphere = MeshPreset.LIGHT.generate();
+        byte[] bytes = read(bake(MeshPreset.LIGHT));
+        int lastIndex = bytes.length - Integer.BYTES;
+
+        putInt(bytes, lastIndex, sphere.getVertices().length / 6);
+        assertThrows(IOException.class, () -> MeshFile.map(write(fixChecksum(bytes))));
+
+        putInt(bytes, lastIndex, -1);
+        assertThrows(IOException.class, () -> MeshFile.map(write(fixChecksum(bytes))));
+    }
+
+    @Test
+    public void writeRejectsInvalidArguments() {
+        SphereGenerator sphere = MeshPreset.LIGHT.generate();
+        Path path = tempDir.resolve("bad.mesh");
+        String source = MeshPreset.LIGHT.source();
+
+        MeshFile.Attribute[] outsideStride = {new MeshFile.Attribute(0, 3, MeshFile.TYPE_FLOAT, false, 4 * Float.BYTES)};
+        assertThrows(IllegalArgumentException.class, () -> MeshFile.write(path, source,
+                6 * Float.BYTES, outsideStride, sphere.getVertices(), sphere.getIndices()));
+
+        assertThrows(IllegalArgumentException.class, () -> MeshFile.write(path, source,
+                0, MeshFile.positionNormalLayout(), sphere.getVertices(), sphere.getIndices()));
+
+        int[] indices = sphere.getIndices().clone();
+        indices[0] = sphere.getVertices().length / 6;
+        assertThrows(IllegalArgumentException.class, () -> MeshFile.write(path, source,
+                6 * Float.BYTES, MeshFile.positionNormalLayout(), sphere.getVertices(), indices));
+    }
+
+    private Path bake(MeshPreset preset) throws IOException {
+        Path path = preset.path(tempDir);
+        MeshBaker.bake(preset, path);
+        return path;
+    }
+
+    private Path write(byte[] bytes) throws IOException {
+        return Files.write(Files.createTempFile(tempDir, "tampered", ".mesh"), bytes);
+    }
+
+    private static byte[] read(Path path) throws IOException {
+        return Files.readAllBytes(path);
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(offset, value);
+    }
+
+    // The source key is padded to 4 bytes and followed by the checksum, then the blobs
+    private static int checksumOffset(byte[] bytes) {
+        int sourceLength = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).getInt(SOURCE_LENGTH_OFFSET);
+        return SOURCE_OFFSET + ((sourceLength + 3) & ~3);
+    }
+
+    private static int dataOffset(byte[] bytes) {
+        return checksumOffset(bytes) + Long.BYTES;
+    }
+
+    // Re-signs a tampered file so that only the validation after the checksum can reject it
+    private static byte[] fixChecksum(byte[] bytes) {
+        int checksumOffset = checksumOffset(bytes);
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, checksumOffset);
+        crc.update(bytes, dataOffset(bytes), bytes.length - dataOffset(bytes));
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putLong(checksumOffset, crc.getValue());
+        return bytes;
+    }
+}